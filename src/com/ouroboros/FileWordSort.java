@@ -1,19 +1,26 @@
 package com.ouroboros;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static java.lang.Character.isWhitespace;
 import static java.lang.Character.toChars;
 
 /**
  * Run the program:<br>
- *      1. Compile the program: javac com.ouroboros.FileWordSort <br>
- *      2. Run the program: java -Xms2m -Xmx5m com.ouroboros.FileWordSort "path to input file" "path to output file" <br>
+ *      1. Compile the program: javac --add-modules jdk.incubator.vector com/ouroboros/*.java <br>
+ *      2. Run the program: java -Xms2m -Xmx5m --add-modules jdk.incubator.vector com.ouroboros.FileWordSort "path to input file" "path to output file" <br>
+ *          Without <code>--add-modules jdk.incubator.vector</code>, the words are found without the vector API.<br>
+ *      3. To also write the index of the output file, add <code>-Dfilewordsort.index=true</code>.
+ *          The index is saved to "path to output file".idx<br>
  * <br>
  * Assumptions:<br>
  *      1. The program can run with max heap size 5M<br>
@@ -30,6 +37,9 @@ import static java.lang.Character.toChars;
  *              save them character by character directly to separate files. One word takes one file.<br>
  *          b) For the short words, when reading it character by character, keep it in a reused buffer.
  *              Save each word to a file. Each word takes one line of the file.<br>
+ *          c) If the default charset is UTF-8, read the file as bytes instead of characters.
+ *              Find the words with <code>WordTokenizer</code>, which checks the ASCII whitespace with the vector API
+ *              and decodes only the non-ASCII characters.<br>
  *      2. Read the file containing the short words. Load the words batch by batch to a reused buffer in memory.
  *          The buffer has a number of entries not exceeding <code>FILE_LINE_THRESHOLD</code>.
  *          Each entry can save a number of characters not exceeding <code>WORD_LENGTH_THRESHOLD</code>.
@@ -43,6 +53,11 @@ import static java.lang.Character.toChars;
  *          Read the long words from the files character by character, and read the sorted words from step 3 character by character.
  *          Compare the long words character by character with the sorted words.
  *          Insert the long words to the sorted words at the right position.<br>
+ *      5. The last merge pass of step 3, or the last insertion of step 4 if there are long words,
+ *          writes the sorted words directly to the output file, so the results are not copied once more.<br>
+ *      6. Optionally, write an index next to the output file, from the bytes of the last merge pass as they are written.
+ *          The index holds the first word and the byte offset of every <code>INDEX_BLOCK_SIZE</code> bytes of the output file,
+ *          and a Bloom filter of all the words. Look up the words with <code>SortedWordIndex</code>.<br>
  * <br>
  * Future Improvement:<br>
  *      1. Use NIO to improve performance<br>
@@ -53,6 +68,11 @@ public class FileWordSort {
 
     private static final int FILE_LINE_THRESHOLD = 2000;        // The number of words in a batch to be kept buffer for sorting
     private static final int WORD_LENGTH_THRESHOLD = 50;        // The max number of characters each word is allowed to take in the buffer
+    private static final boolean INDEX_ENABLED =                // Whether to write the index file next to the output file
+            Boolean.getBoolean("filewordsort.index");
+    private static final int INDEX_BLOCK_SIZE =                 // The number of bytes of the output file in a block of the index
+            Math.min(Math.max(1, Integer.getInteger("filewordsort.indexBlockKb", 64)), 1 << 20) << 10;
+    private static final int ANALYZE_BUFFER_SIZE = 1 << 15;     // The number of bytes of the input file tokenized at a time
 
     private static final String TEMP_FOLDER = UUID.randomUUID().toString();
     private static final String TEMP_LONG_WORD_FOLDER = TEMP_FOLDER + "/long";
@@ -95,7 +115,7 @@ public class FileWordSort {
          * @param outputStream
          * @throws IOException
          */
-        void write(final FileWriter outputStream) throws IOException {
+        void write(final Writer outputStream) throws IOException {
             if (array[0] != -1) {
                 // Ignore -1 value
                 Arrays.stream(array).filter(i -> i >= 0).forEachOrdered(i -> {
@@ -215,17 +235,26 @@ public class FileWordSort {
             splitFileAndSortWord(analyzeFile);
             Files.delete(analyzeFile);
 
+            // An index left by a previous run would not match the new output file
+            if (!INDEX_ENABLED) {
+                Files.deleteIfExists(SortedWordIndex.indexPath(outputFilePath));
+            }
+
+            // The last pass of the merge writes the results to the output file, and the index if it is enabled
+            // If there are long words, it is the last insertion of a long word, otherwise the last merge of the sorted words
+            boolean hasLongWord = listFiles(TEMP_LONG_WORD_FOLDER).size() > 0;
+
             // Merge sort the batches of sorted words to one file
-            Path tempResultPath = mergeSortWord();
+            long[] wordCount = new long[1];
+            Path tempResultPath = mergeSortWord(hasLongWord ? null : outputFilePath, wordCount);
             deleteTempFolder(TEMP_SORTED_WORD_FOLDER);
 
             // Insert long words to the sorted word
-            tempResultPath = mergeLongWord(tempResultPath);
+            if (hasLongWord) {
+                mergeLongWord(tempResultPath, wordCount[0], outputFilePath);
+            }
             deleteTempFolder(TEMP_LONG_WORD_FOLDER);
 
-            // Copy to results to the output file
-            copyFile(tempResultPath, outputFilePath);
-
         } catch (IOException | RuntimeException | Error e) {
             System.out.println("Error occurred when running the program: ");
             e.printStackTrace();
@@ -249,6 +278,10 @@ public class FileWordSort {
      * @throws IOException
      */
     private static Path analyzeFile(Path filePath) throws IOException {
+        // The words can be found in the bytes of the file, only if the words are saved in the same bytes
+        if (StandardCharsets.UTF_8.equals(Charset.defaultCharset())) {
+            return analyzeUtf8File(filePath);
+        }
 
         try (FileReader inputStream = new FileReader(filePath.toFile().getAbsolutePath())) {
 
@@ -312,6 +345,162 @@ public class FileWordSort {
         }
     }
 
+    /**
+     * Analyze the input file in UTF-8, the same as <code>analyzeFile</code>, but without decoding the characters.
+     * Read the file buffer by buffer, and find the words in each buffer with <code>WordTokenizer</code>.
+     * Copy the bytes of each word to the analyze file, or to a separate file if the word is too long.
+     *
+     * @param filePath
+     * @return
+     * @throws IOException
+     */
+    private static Path analyzeUtf8File(Path filePath) throws IOException {
+        WordTokenizer tokenizer = WordTokenizer.create();
+
+        byte[] buffer = new byte[ANALYZE_BUFFER_SIZE];
+        int[] bounds = new int[ANALYZE_BUFFER_SIZE + 1];
+
+        // Keep the bytes of a word that continues in the next buffer
+        // A short word takes at most 3 bytes for each character
+        byte[] word = new byte[WORD_LENGTH_THRESHOLD * 3];
+        int[] wordLength = new int[1];
+        OutputStream[] longWordOutputStream = new OutputStream[1];
+
+        Path analyzeResultFilePath = createTempFile(TEMP_FOLDER);
+
+        try (InputStream inputStream = Files.newInputStream(filePath);
+             OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(analyzeResultFilePath), ANALYZE_BUFFER_SIZE)) {
+
+            int length = 0;
+            while (true) {
+                int read = inputStream.read(buffer, length, buffer.length - length);
+                boolean finish = read == -1;
+                if (!finish) {
+                    length += read;
+                }
+
+                // Do not cut a character at the end of the buffer, keep its bytes for the next buffer
+                int end = finish ? length : characterBoundary(buffer, length);
+
+                int wordCount = tokenizer.tokenize(buffer, 0, end, bounds);
+
+                // The word kept from the last buffer is finished, if this buffer does not start with the rest of it
+                boolean keptWord = wordLength[0] > 0 || longWordOutputStream[0] != null;
+                if (keptWord && (end > 0 || finish) && (wordCount == 0 || bounds[0] > 0)) {
+                    finishWordBytes(outputStream, word, wordLength, longWordOutputStream);
+                }
+
+                for (int w = 0; w < wordCount; w++) {
+                    int start = bounds[2 * w];
+                    int stop = bounds[2 * w + 1];
+
+                    appendWordBytes(buffer, start, stop, word, wordLength, longWordOutputStream);
+
+                    // The word reaching the end of the buffer may continue in the next buffer
+                    if (stop < end || finish) {
+                        finishWordBytes(outputStream, word, wordLength, longWordOutputStream);
+                    }
+                }
+
+                if (finish) {
+                    break;
+                }
+
+                length -= end;
+                System.arraycopy(buffer, end, buffer, 0, length);
+            }
+        } finally {
+            if (longWordOutputStream[0] != null) {
+                longWordOutputStream[0].close();
+            }
+        }
+
+        return analyzeResultFilePath;
+    }
+
+    /**
+     * Append the bytes of a word, or part of a word, to the buffer of the current word.
+     * If the word is too long for the buffer, save it directly to a separate file.
+     *
+     * @param buffer
+     * @param start
+     * @param stop
+     * @param word  the buffer of the current word
+     * @param wordLength  the number of bytes in the buffer of the current word
+     * @param longWordOutputStream  the file of the current word, if it is too long
+     * @throws IOException
+     */
+    private static void appendWordBytes(byte[] buffer, int start, int stop, byte[] word, int[] wordLength,
+                                        OutputStream[] longWordOutputStream) throws IOException {
+        if (longWordOutputStream[0] != null) {
+            longWordOutputStream[0].write(buffer, start, stop - start);
+            return;
+        }
+
+        boolean tooLong = wordLength[0] + stop - start > word.length;
+        if (!tooLong) {
+            System.arraycopy(buffer, start, word, wordLength[0], stop - start);
+            wordLength[0] += stop - start;
+
+            // Count the characters only when the bytes exceed the threshold
+            tooLong = wordLength[0] > WORD_LENGTH_THRESHOLD
+                    && new String(word, 0, wordLength[0], StandardCharsets.UTF_8).length() > WORD_LENGTH_THRESHOLD;
+            start = stop;
+        }
+
+        if (tooLong) {
+            Path longWordFilePath = createTempFile(TEMP_LONG_WORD_FOLDER);
+            longWordOutputStream[0] = new BufferedOutputStream(Files.newOutputStream(longWordFilePath));
+
+            // First save what is already in the buffer, then the rest of the bytes
+            longWordOutputStream[0].write(word, 0, wordLength[0]);
+            longWordOutputStream[0].write(buffer, start, stop - start);
+            wordLength[0] = 0;
+        }
+    }
+
+    /**
+     * Finish the current word. Save it to the analyze file as one line, or close its separate file if it is too long.
+     *
+     * @param outputStream
+     * @param word
+     * @param wordLength
+     * @param longWordOutputStream
+     * @throws IOException
+     */
+    private static void finishWordBytes(OutputStream outputStream, byte[] word, int[] wordLength,
+                                        OutputStream[] longWordOutputStream) throws IOException {
+        if (longWordOutputStream[0] != null) {
+            longWordOutputStream[0].close();
+            longWordOutputStream[0] = null;
+        } else if (wordLength[0] > 0) {
+            outputStream.write(word, 0, wordLength[0]);
+            outputStream.write('\n');
+            wordLength[0] = 0;
+        }
+    }
+
+    /**
+     * Find the end of the last complete UTF-8 character in the buffer.
+     *
+     * @param buffer
+     * @param length  the number of bytes in the buffer
+     * @return
+     */
+    private static int characterBoundary(byte[] buffer, int length) {
+        for (int i = length - 1; i >= Math.max(0, length - 3); i--) {
+            int b = buffer[i] & 0xFF;
+            if (b < 0x80) {     // ASCII character
+                return length;
+            } else if (b >= 0xC0) {     // The first byte of a character
+                int characterLength = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : 2;
+                return i + characterLength > length ? i : length;
+            }
+        }
+
+        return length;
+    }
+
     /**
      * Read the words from the given file, batch by batch.
      * Store each batch of words in the buffer.
@@ -391,10 +580,12 @@ public class FileWordSort {
     /**
      * Merge sort the sorted words to a single file.
      *
-     * @return the path of the file that contains the final results
+     * @param outputFilePath  if not null, the last pass writes the results to this file instead of a temp file
+     * @param wordCount  receives the number of the merged words
+     * @return the path of the temp file that contains the results, if the results are not written to the output file
      * @throws IOException
      */
-    private static Path mergeSortWord() throws IOException {
+    private static Path mergeSortWord(Path outputFilePath, long[] wordCount) throws IOException {
         // Create two files to save temp merge results turn by turn.
         // If in this turn, results are saved in file one,
         // then in next turn, words are read from file one to be merged, and the merge results are saved in file two.
@@ -407,61 +598,78 @@ public class FileWordSort {
         TextArray previousText = new TextArray(WORD_LENGTH_THRESHOLD);
 
         // Go through files of the sorted words
-        Files.walk(Paths.get(TEMP_SORTED_WORD_FOLDER)).filter(Files::isRegularFile).forEach(path -> {
-            try {
-                if (tempSortResultPath.isEmpty()) {     // Take the words from the first encountered file as the initial merge results
-                    Path filePath1 = createTempFile(TEMP_FOLDER);
-                    Path filePath2 = createTempFile(TEMP_FOLDER);
-
-                    tempSortResultPath.add(filePath1);
-                    tempSortResultPath.add(filePath2);
-
-                    copyFile(path, filePath2);
-
-                    usedFirstPath[0] = false;
-                } else {
-                    // Decide which file has the results from last turn and which file to save the results for current turn
-                    Path lastResultPath = tempSortResultPath.get(usedFirstPath[0] ? 0 : 1);
-                    Path outputPath = tempSortResultPath.get(usedFirstPath[0] ? 1 : 0);
-                    usedFirstPath[0] = !usedFirstPath[0];
-
-                    // Read the words from current encountered file
-                    // Read the previously merge sorted words
-                    try (FileWriter outputStream = new FileWriter(outputPath.toFile().getAbsolutePath(), false);
-                         FileReader fileStream1 = new FileReader(path.toFile().getAbsolutePath());
-                         FileReader fileStream2 = new FileReader(lastResultPath.toFile().getAbsolutePath())) {
-
-                        readText(fileStream1, currentText1);
-                        readText(fileStream2, currentText2);
-
-                        // Loop until words from both files are visited
-                        while (!currentText1.isNoChar() || !currentText2.isNoChar()) {
-                            if (currentText1.isNoChar()) {      // If no more words from the first file, save all the rest words from the second file
-                                writeText(outputStream, currentText2, previousText);
-                                readText(fileStream2, currentText2);
-                            } else if (currentText2.isNoChar()) {       // If no more words from the second file, save all the rest words from the first file
-                                writeText(outputStream, currentText1, previousText);
+        List<Path> sortedFilePaths = listFiles(TEMP_SORTED_WORD_FOLDER);
+        for (int f = 0; f < sortedFilePaths.size(); f++) {
+            Path path = sortedFilePaths.get(f);
+            boolean lastTurn = outputFilePath != null && f == sortedFilePaths.size() - 1;
+
+            if (tempSortResultPath.isEmpty()) {     // Take the words from the first encountered file as the initial merge results
+                Path filePath1 = createTempFile(TEMP_FOLDER);
+                Path filePath2 = createTempFile(TEMP_FOLDER);
+
+                tempSortResultPath.add(filePath1);
+                tempSortResultPath.add(filePath2);
+
+                // The words of a batch are sorted without duplicates, there are at most FILE_LINE_THRESHOLD of them
+                try (Writer outputStream = lastTurn
+                        ? openOutputFile(outputFilePath, Files.size(path), FILE_LINE_THRESHOLD)
+                        : new FileWriter(filePath2.toFile().getAbsolutePath(), false)) {
+                    wordCount[0] = copyFile(path, outputStream);
+                }
+
+                usedFirstPath[0] = false;
+            } else {
+                // Decide which file has the results from last turn and which file to save the results for current turn
+                Path lastResultPath = tempSortResultPath.get(usedFirstPath[0] ? 0 : 1);
+                Path outputPath = tempSortResultPath.get(usedFirstPath[0] ? 1 : 0);
+                usedFirstPath[0] = !usedFirstPath[0];
+                long count = 0;
+
+                // Read the words from current encountered file
+                // Read the previously merge sorted words
+                // The merged words are not more than the words of both files
+                try (Writer outputStream = lastTurn
+                        ? openOutputFile(outputFilePath, Files.size(path) + Files.size(lastResultPath), wordCount[0] + FILE_LINE_THRESHOLD)
+                        : new FileWriter(outputPath.toFile().getAbsolutePath(), false);
+                     FileReader fileStream1 = new FileReader(path.toFile().getAbsolutePath());
+                     FileReader fileStream2 = new FileReader(lastResultPath.toFile().getAbsolutePath())) {
+
+                    readText(fileStream1, currentText1);
+                    readText(fileStream2, currentText2);
+
+                    // Loop until words from both files are visited
+                    while (!currentText1.isNoChar() || !currentText2.isNoChar()) {
+                        if (currentText1.isNoChar()) {      // If no more words from the first file, save all the rest words from the second file
+                            if (writeText(outputStream, currentText2, previousText)) {
+                                count++;
+                            }
+                            readText(fileStream2, currentText2);
+                        } else if (currentText2.isNoChar()) {       // If no more words from the second file, save all the rest words from the first file
+                            if (writeText(outputStream, currentText1, previousText)) {
+                                count++;
+                            }
+                            readText(fileStream1, currentText1);
+                        } else {
+                            // Compare the words and save the smaller one
+                            int comp = currentText1.compareTo(currentText2);
+                            if (comp <= 0) {
+                                if (writeText(outputStream, currentText1, previousText)) {
+                                    count++;
+                                }
                                 readText(fileStream1, currentText1);
                             } else {
-                                // Compare the words and save the smaller one
-                                int comp = currentText1.compareTo(currentText2);
-                                if (comp <= 0) {
-                                    writeText(outputStream, currentText1, previousText);
-                                    readText(fileStream1, currentText1);
-                                } else {
-                                    writeText(outputStream, currentText2, previousText);
-                                    readText(fileStream2, currentText2);
+                                if (writeText(outputStream, currentText2, previousText)) {
+                                    count++;
                                 }
+                                readText(fileStream2, currentText2);
                             }
-
                         }
+
                     }
                 }
-
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+                wordCount[0] = count;
             }
-        });
+        }
 
         return tempSortResultPath.get(usedFirstPath[0] ? 0 : 1);
     }
@@ -495,130 +703,179 @@ public class FileWordSort {
      * @param outputStream
      * @param textArray
      * @param pTextArray
+     * @return true if the word is written
      * @throws IOException
      */
-    private static void writeText(FileWriter outputStream, TextArray textArray, TextArray pTextArray) throws IOException {
+    private static boolean writeText(Writer outputStream, TextArray textArray, TextArray pTextArray) throws IOException {
         if (pTextArray.compareTo(textArray) != 0) {
             textArray.write(outputStream);
             pTextArray.clone(textArray);        // Update the previously save word for comparison in next turn
+            return true;
         }
+        return false;
     }
 
     /**
-     * Insert the words, which are too long for the buffer, to the sorted words
+     * Insert the words, which are too long for the buffer, to the sorted words.
+     * The last insertion writes the results to the output file.
      *
      * @param tempResultFilePath
-     * @return
+     * @param wordCount  the number of the words in <code>tempResultFilePath</code>
+     * @param outputFilePath
      * @throws IOException
      */
-    private static Path mergeLongWord(Path tempResultFilePath) throws IOException {
+    private static void mergeLongWord(Path tempResultFilePath, long wordCount, Path outputFilePath) throws IOException {
         // Create two files to save temp insertion results turn by turn.
         // If in this turn, results are saved in file one,
         // then in next turn, words are read from file one, and the insertion results are saved in file two.
         List<Path> sortResultPath = new ArrayList<>(2);
         sortResultPath.add(tempResultFilePath);
         sortResultPath.add(createTempFile(TEMP_FOLDER));
-        boolean[] usedFirstPath = new boolean[1];       // Record which file was used to save results in last turn
-        usedFirstPath[0] = true;
+        boolean usedFirstPath = true;       // Record which file was used to save results in last turn
 
         // Go through all the files containing the long words
-        Files.walk(Paths.get(TEMP_LONG_WORD_FOLDER)).filter(Files::isRegularFile).forEach(path -> {
+        List<Path> longWordFilePaths = listFiles(TEMP_LONG_WORD_FOLDER);
+        for (int f = 0; f < longWordFilePaths.size(); f++) {
+            Path path = longWordFilePaths.get(f);
+            boolean lastTurn = f == longWordFilePaths.size() - 1;
 
             // Decide which file has the results from last turn and which file to save the results for current turn
-            Path lastResultPath = sortResultPath.get(usedFirstPath[0] ? 0 : 1);
-            Path outputPath = sortResultPath.get(usedFirstPath[0] ? 1 : 0);
+            Path lastResultPath = sortResultPath.get(usedFirstPath ? 0 : 1);
+            Path outputPath = sortResultPath.get(usedFirstPath ? 1 : 0);
 
-            try (FileReader fileStream1 = new FileReader(lastResultPath.toFile().getAbsolutePath())) {
-
-                int lineCount = 0;
-                boolean finish = false;
-
-                int i1;
-                boolean b1;
-                int i2;
-                boolean b2;
-
-                // Read the long word again for every word comparison
-                while (true) {
-                    try (FileReader fileStream2 = new FileReader(path.toFile().getAbsolutePath())) {
-
-                        // Read every character of the words to compare
-                        while (true) {
-                            i1 = fileStream1.read();
-                            i2 = fileStream2.read();
+            int lineNum = findWordLine(path, lastResultPath);
+            if (lineNum < 0 && !lastTurn) {     // the long word is a duplicate, skip it
+                continue;
+            }
 
-                            b1 = isWhitespace(i1);
-                            b2 = isWhitespace(i2);
+            // The results have at most one more word, and one more line of the long word
+            try (Writer outputStream = lastTurn
+                    ? openOutputFile(outputFilePath, Files.size(lastResultPath) + Files.size(path) + 1, wordCount + 1)
+                    : new FileWriter(outputPath.toFile().getAbsolutePath(), false)) {
+                if (lineNum >= 0) {     // insert the long word to the file
+                    appendWordLineToFile(path, lastResultPath, outputStream, lineNum);
+                    usedFirstPath = !usedFirstPath;
+                    wordCount++;
+                } else {    // the last long word is a duplicate, the results still go to the output file
+                    copyFile(lastResultPath, outputStream);
+                }
+            }
+        }
+    }
 
-                            if (i2 == -1 || b2) {   // Reach the end of the long word
-                                if (i1 != -1 && !b1) {  // The sorted word is longer than the long word,
-                                                        // insert the long word here
-                                    finish = true;
-                                    break;
-                                } else {    // Also reach the end of the sorted word,
-                                            // means the long word is a duplicate, skip it
-                                    return;
-                                }
-                            } else {    // Not reach the end of the long word
-                                if (i1 == -1) {     // Reach the end of the sorted word file,
-                                                    // Insert the long word to the end of the file
-                                    lineCount++;
-                                    finish = true;
-                                    break;
-                                } else if (b1) {    // Reach the end of the sorted word,
-                                                    // compare with next sorted word
-                                    break;
-                                } else {    // Compare one character of the long word with one character of the sorted word
-                                    if (i1 == i2) {
-                                        continue;
-                                    } else if (i1 > i2) {   // if the character of the long word is smaller, insert long word here
-                                        finish = true;
-                                        break;
-                                    } else  {   // if the character of the long word is greater, skip to the next sorted word
-                                        while ((i1 = fileStream1.read()) != -1 && !isWhitespace(i1)) {
-                                        }
-                                        break;
+    /**
+     * Find the line of the sorted words where the long word should be inserted
+     *
+     * @param wordFilePath  read the long word from this file
+     * @param sortedFilePath  read the sorted words from this file
+     * @return the line number where the long word should be inserted, or -1 if the long word is a duplicate
+     * @throws IOException
+     */
+    private static int findWordLine(Path wordFilePath, Path sortedFilePath) throws IOException {
+        try (FileReader fileStream1 = new FileReader(sortedFilePath.toFile().getAbsolutePath())) {
+
+            int lineCount = 0;
+
+            int i1;
+            boolean b1;
+            int i2;
+            boolean b2;
+
+            // Read the long word again for every word comparison
+            while (true) {
+                try (FileReader fileStream2 = new FileReader(wordFilePath.toFile().getAbsolutePath())) {
+
+                    // Read every character of the words to compare
+                    while (true) {
+                        i1 = fileStream1.read();
+                        i2 = fileStream2.read();
+
+                        b1 = isWhitespace(i1);
+                        b2 = isWhitespace(i2);
+
+                        if (i2 == -1 || b2) {   // Reach the end of the long word
+                            if (i1 != -1 && !b1) {  // The sorted word is longer than the long word,
+                                                    // insert the long word here
+                                return lineCount;
+                            } else {    // Also reach the end of the sorted word,
+                                        // means the long word is a duplicate, skip it
+                                return -1;
+                            }
+                        } else {    // Not reach the end of the long word
+                            if (i1 == -1) {     // Reach the end of the sorted word file,
+                                                // Insert the long word to the end of the file
+                                return lineCount + 1;
+                            } else if (b1) {    // Reach the end of the sorted word,
+                                                // compare with next sorted word
+                                break;
+                            } else {    // Compare one character of the long word with one character of the sorted word
+                                if (i1 == i2) {
+                                    continue;
+                                } else if (i1 > i2) {   // if the character of the long word is smaller, insert long word here
+                                    return lineCount;
+                                } else  {   // if the character of the long word is greater, skip to the next sorted word
+                                    while ((i1 = fileStream1.read()) != -1 && !isWhitespace(i1)) {
                                     }
+                                    break;
                                 }
                             }
-
                         }
 
                     }
 
-                    if (finish) {   // insert the long word to the file
-                        appendWordLineToFile(path, lastResultPath, outputPath, lineCount);
-                        usedFirstPath[0] = !usedFirstPath[0];
-                        return;
-                    }
-
-                    lineCount++;
                 }
 
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+                lineCount++;
             }
-        });
-
-        return sortResultPath.get(usedFirstPath[0] ? 0 : 1);
+        }
     }
 
     /**
      * Read the contents of the source file, character by character.
-     * Write the characters sequentially to the destination file.
+     * Write the characters sequentially to the output stream.
      *
      * @param srcPath
-     * @param destPath
+     * @param outputStream
+     * @return the number of lines copied
      * @throws IOException
      */
-    private static void copyFile(Path srcPath, Path destPath) throws IOException {
-        try (FileWriter outputStream = new FileWriter(destPath.toFile().getAbsolutePath(), false);
-             FileReader inputStream = new FileReader(srcPath.toFile().getAbsolutePath())) {
+    private static long copyFile(Path srcPath, Writer outputStream) throws IOException {
+        long lineCount = 0;
+        try (FileReader inputStream = new FileReader(srcPath.toFile().getAbsolutePath())) {
             int i;
             while ((i = inputStream.read()) != -1) {
                 outputStream.write(toChars(i));
+                if (i == '\n') {
+                    lineCount++;
+                }
+            }
+        }
+        return lineCount;
+    }
+
+    /**
+     * Open the output file to write the results, dropping its previous contents.
+     * If the index is enabled, the index is built from the bytes written to the output file.
+     *
+     * @param outputFilePath
+     * @param maxSize  the max number of bytes to be written, to size the index
+     * @param maxWordCount  the max number of words to be written, to size the index
+     * @return
+     * @throws IOException
+     */
+    private static Writer openOutputFile(Path outputFilePath, long maxSize, long maxWordCount) throws IOException {
+        OutputStream outputStream = Files.newOutputStream(outputFilePath);
+        if (INDEX_ENABLED) {
+            try {
+                outputStream = SortedWordIndex.indexingStream(outputStream, SortedWordIndex.indexPath(outputFilePath),
+                        INDEX_BLOCK_SIZE, Charset.defaultCharset(), maxSize, maxWordCount);
+            } catch (IOException | RuntimeException e) {
+                outputStream.close();
+                throw e;
             }
         }
+
+        return new OutputStreamWriter(outputStream, Charset.defaultCharset());
     }
 
     /**
@@ -626,13 +883,12 @@ public class FileWordSort {
      *
      * @param wordFilePath  read the word to be inserted from this file
      * @param srcFilePath  insert the word among the words of this file
-     * @param destFilePath  save the words of the insertion results to this file
+     * @param outputStream  save the words of the insertion results to this stream
      * @param lineNum  the line number where the word should be inserted
      * @throws IOException
      */
-    private static void appendWordLineToFile(Path wordFilePath, Path srcFilePath, Path destFilePath, int lineNum) throws IOException {
-        try (FileReader inputStream = new FileReader(srcFilePath.toFile().getAbsolutePath());
-            FileWriter outputStream = new FileWriter(destFilePath.toFile().getAbsoluteFile(), false)) {
+    private static void appendWordLineToFile(Path wordFilePath, Path srcFilePath, Writer outputStream, int lineNum) throws IOException {
+        try (FileReader inputStream = new FileReader(srcFilePath.toFile().getAbsolutePath())) {
 
             // If insert to the first line
             if (lineNum == 0) {
@@ -677,7 +933,7 @@ public class FileWordSort {
      * @param outputStream
      * @throws IOException
      */
-    private static void writeWordLineToFile(Path wordFilePath, FileWriter outputStream) throws IOException {
+    private static void writeWordLineToFile(Path wordFilePath, Writer outputStream) throws IOException {
         try (FileReader wordStream = new FileReader(wordFilePath.toFile().getAbsoluteFile())) {
             int iw;
             while ((iw = wordStream.read()) != -1 && !isWhitespace(iw)) {
@@ -687,6 +943,19 @@ public class FileWordSort {
         }
     }
 
+    /**
+     * List the files in the given folder, in the order they are visited
+     *
+     * @param folderName
+     * @return
+     * @throws IOException
+     */
+    private static List<Path> listFiles(String folderName) throws IOException {
+        try (Stream<Path> paths = Files.walk(Paths.get(folderName))) {
+            return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
     /**
      * Create a folder with the given name.
      *
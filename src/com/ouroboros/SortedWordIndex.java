@@ -0,0 +1,762 @@
+package com.ouroboros;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Look up the words in a sorted output file of <code>FileWordSort</code>, with the index file written next to it.<br>
+ * <br>
+ * The index file holds:<br>
+ *      1. A Bloom filter of all the words, to answer most lookups of missing words without reading the output file.<br>
+ *      2. A sparse block index. The output file is split to blocks at the first word starting after every
+ *          <code>blockSize</code> bytes. For each block, the index keeps its byte offset,
+ *          and the first <code>KEY_PREFIX_LENGTH</code> characters of its first word.<br>
+ * <br>
+ * A lookup maps the index file to memory, finds the block of the word with a binary search on the prefixes,
+ * and reads the words of that block from the output file until it reaches the word.
+ * Only if the word has the same prefix as a longer first word, that first word is compared in the output file.
+ * The words are decoded and compared character by character, by the unicode values of their characters,
+ * the same as they are sorted. So a long word is never kept in memory, unless it is returned.<br>
+ * <br>
+ * The lookups can be run by several threads at the same time.
+ */
+public final class SortedWordIndex implements Closeable {
+
+    public static final String INDEX_FILE_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x46575349;        // "FWSI"
+    private static final int VERSION = 2;
+
+    // Layout of the index file:
+    //      header: magic, version, block size, hash count, Bloom filter bits, block count, block table capacity,
+    //              sorted file size, word count, charset name
+    //      Bloom filter: the bits of the filter
+    //      block table: the position of the entry of each block
+    //      block entries: the offset of the block in the sorted file, the length and the bytes of the prefix of the first word
+    private static final int HASH_COUNT_POSITION = 12;
+    private static final int BLOOM_BITS_POSITION = 16;
+    private static final int BLOCK_COUNT_POSITION = 24;
+    private static final int DATA_SIZE_POSITION = 40;
+    private static final int WORD_COUNT_POSITION = 48;
+    private static final int CHARSET_POSITION = 56;
+    private static final int CHARSET_NAME_LENGTH = 36;
+    private static final int HEADER_SIZE = 96;
+
+    private static final int ENTRY_HEADER_SIZE = 12;        // The offset of the block in the output file, and the length of the prefix
+    private static final int KEY_PREFIX_LENGTH = 64;        // The max number of characters of the first word of a block in the index
+    private static final int KEY_CUT = 1 << 31;             // Set in the length of a prefix, if the bytes of the word were cut
+    private static final int BLOOM_BITS_PER_WORD = 10;      // About 1% false positives
+    private static final int BLOOM_HASH_COUNT = 7;
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    // The comparison of a word with the range of a scan
+    private static final int NO_WORD = 0;       // No more words to read
+    private static final int BELOW = 1;         // The word is smaller than the range
+    private static final int IN_RANGE = 2;
+    private static final int ABOVE = 3;         // The word is not smaller than the end of the range
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final FileChannel dataChannel;
+    private final ByteBuffer index;
+    private final Charset charset;
+
+    private final int hashCount;
+    private final long bloomBits;
+    private final long blockCount;
+    private final long dataSize;
+    private final long wordCount;
+    private final int tablePosition;
+
+    private SortedWordIndex(FileChannel dataChannel, ByteBuffer index) throws IOException {
+        this.dataChannel = dataChannel;
+        this.index = index;
+
+        if (index.capacity() < HEADER_SIZE || index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+            throw new IOException("Invalid index file.");
+        }
+
+        hashCount = index.getInt(HASH_COUNT_POSITION);
+        bloomBits = index.getLong(BLOOM_BITS_POSITION);
+        blockCount = index.getLong(BLOCK_COUNT_POSITION);
+        dataSize = index.getLong(DATA_SIZE_POSITION);
+        wordCount = index.getLong(WORD_COUNT_POSITION);
+        tablePosition = HEADER_SIZE + (int) (bloomBits / 8);
+
+        byte[] charsetName = new byte[index.get(CHARSET_POSITION)];
+        index.get(CHARSET_POSITION + 1, charsetName);
+        charset = Charset.forName(new String(charsetName, StandardCharsets.US_ASCII));
+
+        if (dataChannel.size() != dataSize) {
+            throw new IOException("The index file does not match the sorted file.");
+        }
+    }
+
+    /**
+     * Open the index written next to the given sorted file.
+     *
+     * @param sortedFilePath
+     * @return
+     * @throws IOException
+     */
+    public static SortedWordIndex open(Path sortedFilePath) throws IOException {
+        return open(sortedFilePath, indexPath(sortedFilePath));
+    }
+
+    /**
+     * Open the given index of the given sorted file.
+     *
+     * @param sortedFilePath
+     * @param indexFilePath
+     * @return
+     * @throws IOException
+     */
+    public static SortedWordIndex open(Path sortedFilePath, Path indexFilePath) throws IOException {
+        FileChannel dataChannel = FileChannel.open(sortedFilePath, StandardOpenOption.READ);
+        try (FileChannel indexChannel = FileChannel.open(indexFilePath, StandardOpenOption.READ)) {
+            if (indexChannel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The index file is too large.");
+            }
+
+            // The mapping stays valid after the channel is closed
+            return new SortedWordIndex(dataChannel, indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size()));
+        } catch (IOException | RuntimeException e) {
+            dataChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the path of the index file of the given sorted file.
+     *
+     * @param sortedFilePath
+     * @return
+     */
+    public static Path indexPath(Path sortedFilePath) {
+        return sortedFilePath.resolveSibling(sortedFilePath.getFileName() + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Get the number of words in the sorted file.
+     *
+     * @return
+     */
+    public long wordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Check if the sorted file contains the given word.
+     *
+     * @param word
+     * @return
+     * @throws IOException
+     */
+    public boolean contains(String word) throws IOException {
+        if (word.isEmpty() || !mightContain(word.getBytes(charset))) {
+            return false;
+        }
+
+        long block = findBlock(word);
+        WordReader reader = new WordReader(blockOffset(block), blockOffset(block + 1));
+
+        // The word followed by the smallest character is the smallest string greater than the word,
+        // so the word is the only one in the range
+        String next = word + '\u0000';
+        int state;
+        while ((state = reader.next(word, next, null)) == BELOW) {
+        }
+
+        return state == IN_RANGE;
+    }
+
+    /**
+     * Get the words in the sorted file, which are not smaller than <code>from</code> and smaller than <code>to</code>.
+     *
+     * @param from  inclusive
+     * @param to  exclusive
+     * @return the words in sorted order
+     * @throws IOException
+     */
+    public List<String> rangeScan(String from, String to) throws IOException {
+        List<String> words = new ArrayList<>();
+        if (from.compareTo(to) >= 0) {
+            return words;
+        }
+
+        // Read from the block of the first word, until a word is not smaller than the end of the range
+        WordReader reader = new WordReader(blockOffset(findBlock(from)), dataSize);
+        StringBuilder word = new StringBuilder();
+        int state;
+        while ((state = reader.next(from, to, word)) != NO_WORD && state != ABOVE) {
+            if (state == IN_RANGE) {
+                words.add(word.toString());
+            }
+        }
+
+        return words;
+    }
+
+    @Override
+    public void close() throws IOException {
+        dataChannel.close();
+    }
+
+    /**
+     * Check the word in the Bloom filter.
+     *
+     * @param word  the bytes of the word
+     * @return false if the word is surely not in the sorted file
+     */
+    private boolean mightContain(byte[] word) {
+        long hash = FNV_OFFSET;
+        for (byte b : word) {
+            hash = hashStep(hash, b);
+        }
+        hash = hashFinish(hash);
+
+        for (int i = 0; i < hashCount; i++) {
+            long bit = bloomBit(hash, i, bloomBits);
+            if ((index.get(HEADER_SIZE + (int) (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Find the last block, the first word of which is not greater than the given word.
+     *
+     * @param word
+     * @return the number of the block, 0 if the word is smaller than all the words
+     * @throws IOException
+     */
+    private long findBlock(String word) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer prefix = CharBuffer.allocate(KEY_PREFIX_LENGTH + 2);
+
+        long low = 0;
+        long high = blockCount - 1;
+        long found = 0;
+
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            if (compareFirstWord(middle, word, decoder, prefix) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Compare the first word of the given block with the given word.
+     * Compare the prefixes of at most <code>KEY_PREFIX_LENGTH</code> characters in the index first.
+     * Only if they are the same, and the first word is longer than its prefix, read the first word from the sorted file.
+     *
+     * @param block
+     * @param word
+     * @param decoder
+     * @param prefix  the buffer to decode the prefix to
+     * @return
+     * @throws IOException
+     */
+    private int compareFirstWord(long block, String word, CharsetDecoder decoder, CharBuffer prefix) throws IOException {
+        int length = prefix(block, decoder, prefix);
+        int prefixLength = Math.min(length, KEY_PREFIX_LENGTH);
+        int wordLength = Math.min(word.length(), KEY_PREFIX_LENGTH);
+
+        for (int i = 0; i < Math.min(prefixLength, wordLength); i++) {
+            int comp = Character.compare(prefix.get(i), word.charAt(i));
+            if (comp != 0) {
+                return comp;
+            }
+        }
+        if (prefixLength != wordLength) {
+            return Integer.compare(prefixLength, wordLength);
+        }
+
+        // The prefix is the whole first word
+        if (!isCut(block) && length <= KEY_PREFIX_LENGTH) {
+            return Integer.compare(length, word.length());
+        }
+
+        // The word followed by the smallest character is the smallest string greater than the word
+        switch (new WordReader(blockOffset(block), dataSize).next(word, word + '\u0000', null)) {
+            case BELOW:
+                return -1;
+            case IN_RANGE:
+                return 0;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Check if the bytes of the first word of the given block are cut in the index.
+     *
+     * @param block
+     * @return
+     */
+    private boolean isCut(long block) {
+        int entryPosition = (int) index.getLong(tablePosition + (int) block * 8);
+        return (index.getInt(entryPosition + 8) & KEY_CUT) != 0;
+    }
+
+    /**
+     * Decode the prefix of the first word of the given block from the index.
+     * The writer keeps enough bytes for <code>KEY_PREFIX_LENGTH + 1</code> characters,
+     * so the first word is longer than the prefix if more than <code>KEY_PREFIX_LENGTH</code> characters are decoded.
+     *
+     * @param block
+     * @param decoder
+     * @param prefix  receives the characters from its start
+     * @return the number of characters decoded
+     */
+    private int prefix(long block, CharsetDecoder decoder, CharBuffer prefix) {
+        int entryPosition = (int) index.getLong(tablePosition + (int) block * 8);
+        int length = index.getInt(entryPosition + 8);
+        boolean cut = (length & KEY_CUT) != 0;
+
+        ByteBuffer key = index.duplicate();
+        key.position(entryPosition + ENTRY_HEADER_SIZE).limit(entryPosition + ENTRY_HEADER_SIZE + (length & ~KEY_CUT));
+
+        // The bytes of a character cut at the end of the prefix are left, the buffer may also overflow
+        decoder.reset();
+        prefix.clear();
+        if (decoder.decode(key, prefix, !cut).isUnderflow() && !cut) {
+            decoder.flush(prefix);
+        }
+        return prefix.position();
+    }
+
+    /**
+     * Get the offset of the given block in the sorted file.
+     *
+     * @param block
+     * @return
+     */
+    private long blockOffset(long block) {
+        if (block >= blockCount) {
+            return dataSize;
+        }
+
+        int entryPosition = (int) index.getLong(tablePosition + (int) block * 8);
+        return index.getLong(entryPosition);
+    }
+
+    /**
+     * Read the words of a range of the sorted file one by one, and decode them character by character.
+     * A reader is used by one thread only.
+     */
+    private final class WordReader {
+
+        private final long end;
+        private long position;
+        private boolean finished;       // All the bytes of the range are decoded
+
+        private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        private final CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        /**
+         * @param start  the offset of the first word in the sorted file
+         * @param end  the offset after the last word in the sorted file
+         */
+        WordReader(long start, long end) {
+            this.position = start;
+            this.end = end;
+            bytes.limit(0);
+            chars.limit(0);
+        }
+
+        /**
+         * Read the next word, and compare it with the range while it is read.
+         * Stop reading a word as soon as it is known to be above the range,
+         * and skip the rest of a word as soon as it is known to be below the range.
+         *
+         * @param from  the start of the range, inclusive
+         * @param to  the end of the range, exclusive
+         * @param word  if not null, receives the characters of the word when it is in the range
+         * @return one of <code>NO_WORD</code>, <code>BELOW</code>, <code>IN_RANGE</code> and <code>ABOVE</code>
+         * @throws IOException
+         */
+        int next(String from, String to, StringBuilder word) throws IOException {
+            if (word != null) {
+                word.setLength(0);
+            }
+
+            // The comparisons with the ends of the range, 0 while they are not decided by the characters read so far
+            int compFrom = 0;
+            int compTo = 0;
+            int length = 0;
+
+            int c;
+            while ((c = read()) != -1 && c != '\n') {
+                if (compFrom == 0) {
+                    compFrom = length < from.length() ? Integer.compare(c, from.charAt(length)) : 1;
+                }
+                if (compTo == 0) {
+                    compTo = length < to.length() ? Integer.compare(c, to.charAt(length)) : 1;
+                }
+
+                if (compTo > 0) {
+                    return ABOVE;
+                }
+                if (compFrom < 0) {
+                    while ((c = read()) != -1 && c != '\n') {
+                    }
+                    return BELOW;
+                }
+
+                if (word != null) {
+                    word.append((char) c);
+                }
+                length++;
+            }
+
+            if (c == -1 && length == 0) {
+                return NO_WORD;
+            }
+
+            // The word ends before it differs from an end of the range, so it is smaller unless it has the same length
+            if (compFrom == 0 && length < from.length()) {
+                return BELOW;
+            }
+            return compTo == 0 && length == to.length() ? ABOVE : IN_RANGE;
+        }
+
+        /**
+         * Read the next character of the range.
+         *
+         * @return the character, or -1 at the end of the range
+         * @throws IOException
+         */
+        private int read() throws IOException {
+            while (!chars.hasRemaining()) {
+                if (finished) {
+                    return -1;
+                }
+
+                // Keep the bytes of a cut character, and read more bytes of the range after them
+                bytes.compact();
+                int count = (int) Math.min(bytes.remaining(), end - position);
+                if (count > 0) {
+                    int limit = bytes.limit();
+                    bytes.limit(bytes.position() + count);
+                    int read = dataChannel.read(bytes, position);
+                    bytes.limit(limit);
+                    if (read < 0) {
+                        throw new EOFException("Unexpected end of the sorted file.");
+                    }
+                    position += read;
+                }
+                bytes.flip();
+
+                boolean endOfInput = position >= end;
+                chars.clear();
+                CoderResult result = decoder.decode(bytes, chars, endOfInput);
+                if (endOfInput && result.isUnderflow()) {
+                    decoder.flush(chars);
+                    finished = true;
+                }
+                chars.flip();
+            }
+
+            return chars.get();
+        }
+    }
+
+    /**
+     * Wrap the stream of a sorted file, to write the index of the sorted file from the bytes written to the stream.
+     * The index is complete when the stream is closed.
+     * The Bloom filter is set in the memory mapped index file, so the heap only keeps a small buffer.
+     *
+     * @param out  the stream of the sorted file
+     * @param indexFilePath
+     * @param blockSize  the min number of bytes of the sorted file in a block
+     * @param charset  the charset of the sorted file
+     * @param maxSize  the max number of bytes to be written, to size the block table
+     * @param maxWordCount  the max number of words to be written, to size the Bloom filter
+     * @return
+     * @throws IOException
+     */
+    static OutputStream indexingStream(OutputStream out, Path indexFilePath, int blockSize, Charset charset,
+                                       long maxSize, long maxWordCount) throws IOException {
+        return new IndexingOutputStream(out, indexFilePath, blockSize, charset, maxSize, maxWordCount);
+    }
+
+    /**
+     * Pass the bytes of a sorted file through, and add every word to the Bloom filter,
+     * and the first word of every block to the block index.
+     */
+    private static final class IndexingOutputStream extends FilterOutputStream {
+
+        private final FileChannel output;
+        private final MappedByteBuffer bloom;
+        private final ByteBuffer key;
+        private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+
+        private final int blockSize;
+        private final Charset charset;
+        private final long bloomBits;
+        private final long tableCapacity;
+        private final long tablePosition;
+
+        private long entryPosition;         // Where the next block entry is written
+        private long blockStart = -1;       // Where the entry of the current block is written, -1 if the first word is written
+        private long keyLength;
+        private long blockCount;
+        private long nextBlockOffset;       // The next block starts at the first word from this offset
+        private boolean lineStart = true;
+        private long hash = FNV_OFFSET;
+        private long wordCount;
+        private long offset;
+        private boolean closed;
+
+        IndexingOutputStream(OutputStream out, Path indexFilePath, int blockSize, Charset charset,
+                             long maxSize, long maxWordCount) throws IOException {
+            super(out);
+            this.blockSize = blockSize;
+            this.charset = charset;
+
+            // Keep enough bytes for at least KEY_PREFIX_LENGTH + 1 characters, if the word has that many
+            key = ByteBuffer.allocate((int) Math.ceil(charset.newEncoder().maxBytesPerChar()) * (KEY_PREFIX_LENGTH + 2));
+
+            bloomBits = Math.min(Math.max(64, (maxWordCount * BLOOM_BITS_PER_WORD + 63) / 64 * 64), (Integer.MAX_VALUE / 8L) * 64);
+            tableCapacity = Math.max(1, (maxSize + blockSize - 1) / blockSize);
+            tablePosition = HEADER_SIZE + bloomBits / 8;
+            if (tablePosition + tableCapacity * 8 > Integer.MAX_VALUE) {
+                throw new IOException("The sorted file is too large for the index, use a larger block size.");
+            }
+            entryPosition = tablePosition + tableCapacity * 8;
+
+            // Truncate an existing index first, so that it is never valid until the header is written
+            output = FileChannel.open(indexFilePath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                bloom = output.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, bloomBits / 8);
+            } catch (IOException | RuntimeException e) {
+                output.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            index((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            for (int i = off; i < off + len; i++) {
+                index(b[i]);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                super.close();
+                finish();
+            } finally {
+                output.close();
+            }
+        }
+
+        /**
+         * Add the next byte of the sorted file to the index.
+         *
+         * @param b
+         * @throws IOException
+         */
+        private void index(byte b) throws IOException {
+            if (lineStart) {
+                if (offset >= nextBlockOffset) {        // Start a new block with this word
+                    if (blockCount == tableCapacity) {
+                        throw new IOException("The sorted file is larger than expected by the index.");
+                    }
+                    writeLong(output, entry, tablePosition + blockCount * 8, entryPosition);
+                    blockCount++;
+                    nextBlockOffset = (offset / blockSize + 1) * blockSize;
+
+                    blockStart = entryPosition;
+                    entryPosition += ENTRY_HEADER_SIZE;
+                    keyLength = 0;
+
+                    entry.clear();
+                    entry.putLong(offset).putInt(0).flip();
+                    writeFully(output, entry, blockStart);
+                }
+
+                hash = FNV_OFFSET;
+                lineStart = false;
+            }
+
+            if (b == '\n') {
+                finishWord();
+                lineStart = true;
+            } else {
+                hash = hashStep(hash, b);
+
+                if (blockStart >= 0) {
+                    if (key.hasRemaining()) {
+                        key.put(b);
+                    }
+                    keyLength++;
+                }
+            }
+
+            offset++;
+        }
+
+        /**
+         * Add the current word to the Bloom filter, and finish the entry of the block if it is the first word.
+         *
+         * @throws IOException
+         */
+        private void finishWord() throws IOException {
+            addToBloom(bloom, hashFinish(hash), bloomBits);
+            wordCount++;
+
+            if (blockStart >= 0) {
+                int keptLength = key.position();
+                entryPosition = flushKey(output, key, entryPosition);
+                entry.clear();
+                entry.putInt(keyLength > keptLength ? keptLength | KEY_CUT : keptLength).flip();
+                writeFully(output, entry, blockStart + 8);
+                blockStart = -1;
+            }
+        }
+
+        /**
+         * Finish the last word and write the header.
+         *
+         * @throws IOException
+         */
+        private void finish() throws IOException {
+            // The last word may not end with a new line
+            if (!lineStart) {
+                finishWord();
+            }
+
+            if (entryPosition > Integer.MAX_VALUE) {
+                throw new IOException("The index file is too large, use a larger block size.");
+            }
+
+            bloom.force();
+
+            // Write the header last, so that an incomplete index file is never valid
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(blockSize).putInt(BLOOM_HASH_COUNT)
+                    .putLong(bloomBits).putLong(blockCount).putLong(tableCapacity).putLong(offset).putLong(wordCount);
+
+            byte[] charsetName = charset.name().getBytes(StandardCharsets.US_ASCII);
+            if (charsetName.length > CHARSET_NAME_LENGTH) {
+                throw new IOException("Unsupported charset: " + charset.name());
+            }
+            header.put(CHARSET_POSITION, (byte) charsetName.length).put(CHARSET_POSITION + 1, charsetName);
+            header.clear();
+            writeFully(output, header, 0);
+        }
+    }
+
+    private static long flushKey(FileChannel output, ByteBuffer key, long position) throws IOException {
+        key.flip();
+        position += writeFully(output, key, position);
+        key.clear();
+        return position;
+    }
+
+    private static void writeLong(FileChannel output, ByteBuffer buffer, long position, long value) throws IOException {
+        buffer.clear();
+        buffer.putLong(value).flip();
+        writeFully(output, buffer, position);
+    }
+
+    private static int writeFully(FileChannel output, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += output.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static void addToBloom(MappedByteBuffer bloom, long hash, long bloomBits) {
+        for (int i = 0; i < BLOOM_HASH_COUNT; i++) {
+            long bit = bloomBit(hash, i, bloomBits);
+            int position = (int) (bit >>> 3);
+            bloom.put(position, (byte) (bloom.get(position) | (1 << (bit & 7))));
+        }
+    }
+
+    /**
+     * Get the i-th bit of a word in the Bloom filter, derived from two halves of the word hash.
+     *
+     * @param hash
+     * @param i
+     * @param bloomBits
+     * @return
+     */
+    private static long bloomBit(long hash, int i, long bloomBits) {
+        long h1 = hash >>> 32;
+        long h2 = (hash & 0xFFFFFFFFL) | 1;
+        return Math.floorMod(h1 + i * h2, bloomBits);
+    }
+
+    /**
+     * Add a byte to the 64 bit FNV-1a hash of a word.
+     *
+     * @param hash
+     * @param b
+     * @return
+     */
+    private static long hashStep(long hash, byte b) {
+        return (hash ^ (b & 0xFF)) * FNV_PRIME;
+    }
+
+    /**
+     * Mix the bits of the FNV-1a hash, so that both halves of the hash are well distributed.
+     *
+     * @param hash
+     * @return
+     */
+    private static long hashFinish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,110 @@
+package com.ouroboros;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static java.lang.Character.isWhitespace;
+
+/**
+ * Find the words in a buffer of UTF-8 bytes with the vector API.<br>
+ * <br>
+ * Compare a block of bytes (32 or 64 bytes on AVX2 or AVX-512 CPUs, at most 64 bytes) with the ASCII whitespace characters at a time,
+ * and find the word boundaries from the bits of the comparison mask.
+ * Only the non-ASCII characters of a block are decoded one by one, the same as <code>WordTokenizer</code> does,
+ * and the bits of the multi-byte whitespace characters are added to the mask.<br>
+ * <br>
+ * Requires the <code>jdk.incubator.vector</code> module: compile and run with <code>--add-modules jdk.incubator.vector</code>.
+ * Use <code>WordTokenizer.create()</code> instead of creating this class directly.
+ * Run <code>WordTokenizerCheck</code> to check that it finds the same words as <code>WordTokenizer</code>.
+ */
+final class VectorWordTokenizer extends WordTokenizer {
+
+    // The mask bits of a block must fit in a long, so use at most 64 lanes, even if the CPU has wider vectors (e.g. SVE)
+    private static final VectorSpecies<Byte> SPECIES =
+            ByteVector.SPECIES_PREFERRED.length() <= Long.SIZE ? ByteVector.SPECIES_PREFERRED : ByteVector.SPECIES_512;
+    private static final int LANES = SPECIES.length();
+    private static final long LANE_MASK = LANES == Long.SIZE ? -1L : (1L << LANES) - 1;
+
+    private int blockEnd;       // The offset after the last character starting in the last block with non-ASCII bytes
+
+    @Override
+    void scan(byte[] buffer, int from, int to) {
+        int i = from;
+
+        // The last character of a block may end after the block boundary, so check for a full block every time
+        while (i <= to - LANES) {
+            ByteVector block = ByteVector.fromArray(SPECIES, buffer, i);
+            int next = i + LANES;       // The offset after the last character starting in the block
+
+            // The ASCII whitespace characters: '\t' to '\r', 0x1C to 0x1F and ' '.
+            // The non-ASCII bytes are negative, so they are never in the mask
+            VectorMask<Byte> whitespace = block.compare(VectorOperators.EQ, (byte) ' ')
+                    .or(block.compare(VectorOperators.GE, (byte) 0x09).and(block.compare(VectorOperators.LE, (byte) 0x0D)))
+                    .or(block.compare(VectorOperators.GE, (byte) 0x1C).and(block.compare(VectorOperators.LE, (byte) 0x1F)));
+            long delimiters = whitespace.toLong();
+
+            // Only the non-ASCII bytes need to be decoded
+            VectorMask<Byte> nonAscii = block.compare(VectorOperators.LT, (byte) 0);
+            if (nonAscii.anyTrue()) {
+                delimiters |= multiByteWhitespace(buffer, i, nonAscii.toLong(), to);
+                next = blockEnd;
+            }
+
+            // A word starts at a non-whitespace byte after a whitespace byte,
+            // and ends at a whitespace byte after a non-whitespace byte
+            long previous = (delimiters << 1) | (inWord() ? 0 : 1);
+            long starts = ~delimiters & previous & LANE_MASK;
+            long ends = delimiters & ~previous & LANE_MASK;
+
+            // The starts and the ends alternate, visit them in order of their offsets
+            long boundaries = starts | ends;
+            while (boundaries != 0) {
+                int lane = Long.numberOfTrailingZeros(boundaries);
+                if ((starts & (1L << lane)) != 0) {
+                    startWord(i + lane);
+                } else {
+                    endWord(i + lane);
+                }
+                boundaries &= boundaries - 1;
+            }
+
+            i = next;
+        }
+
+        // Scan the rest of the bytes which do not fill a block
+        scan(buffer, i, to, to);
+    }
+
+    /**
+     * Decode the non-ASCII characters of a block one by one, and find the bytes of the whitespace characters.
+     * The bytes after the first byte of a character are skipped. The last character may end in the next block,
+     * then <code>blockEnd</code> is moved after it.
+     * Kept out of <code>scan</code>, so that the vector operations there are still compiled to vector instructions.
+     *
+     * @param buffer
+     * @param offset  the offset of the block
+     * @param nonAscii  the mask of the non-ASCII bytes of the block
+     * @param to
+     * @return the mask of the bytes of the multi-byte whitespace characters
+     */
+    private long multiByteWhitespace(byte[] buffer, int offset, long nonAscii, int to) {
+        long whitespace = 0;
+        blockEnd = offset + LANES;
+        while (nonAscii != 0) {
+            int lane = Long.numberOfTrailingZeros(nonAscii);
+            int length = sequenceLength(buffer, offset + lane, to);
+            long lanes = ((1L << length) - 1) << lane;
+
+            if (length > 1 && isWhitespace(decode(buffer, offset + lane, length))) {
+                whitespace |= lanes;
+            }
+
+            nonAscii &= ~lanes;
+            blockEnd = Math.max(blockEnd, offset + lane + length);
+        }
+
+        return whitespace;
+    }
+}
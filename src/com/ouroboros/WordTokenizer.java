@@ -0,0 +1,211 @@
+package com.ouroboros;
+
+import static java.lang.Character.isWhitespace;
+
+/**
+ * Find the words in a buffer of UTF-8 bytes, without decoding the characters.<br>
+ * <br>
+ * The words are separated by the same characters as <code>Character.isWhitespace</code>.
+ * An ASCII byte is checked with a lookup table.
+ * A non-ASCII byte starts a multi-byte character, which is decoded only to check it with <code>isWhitespace</code>.
+ * A malformed byte is never a separator, the same as the replacement character it is decoded to.<br>
+ * <br>
+ * This class scans the buffer byte by byte. Use <code>create()</code> to get the vectorized tokenizer when it is available.
+ * A tokenizer keeps the state of the current scan, so it must not be shared by threads.
+ */
+class WordTokenizer {
+
+    private static final String VECTOR_TOKENIZER = "com.ouroboros.VectorWordTokenizer";
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static final boolean[] ASCII_WHITESPACE = new boolean[128];
+
+    static {
+        for (int i = 0; i < ASCII_WHITESPACE.length; i++) {
+            ASCII_WHITESPACE[i] = isWhitespace(i);
+        }
+    }
+
+    private int[] bounds;       // The start and end offsets of the words found so far
+    private int count;          // The number of entries set in bounds
+    private int start;          // The start offset of the current word, -1 if not in a word
+
+    /**
+     * Create the vectorized tokenizer if the <code>jdk.incubator.vector</code> module is loaded,
+     * and it is not disabled by the system property <code>filewordsort.scalarTokenizer</code>.
+     * Otherwise create the scalar tokenizer.
+     *
+     * @return
+     */
+    static WordTokenizer create() {
+        if (!Boolean.getBoolean("filewordsort.scalarTokenizer") && ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                // Load by name, so that this class does not depend on the incubator module
+                return (WordTokenizer) Class.forName(VECTOR_TOKENIZER).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall back to the scalar tokenizer
+            }
+        }
+
+        return new WordTokenizer();
+    }
+
+    /**
+     * Find the words in the given range of the buffer.
+     * The range should end at a character boundary, otherwise the cut character is treated as malformed.
+     * A word touching either end of the range may continue in the previous or the next buffer.
+     *
+     * @param buffer
+     * @param from  the offset of the first byte to scan
+     * @param to  the offset after the last byte to scan
+     * @param bounds  receives the start (inclusive) and end (exclusive) offsets of the words, in pairs.
+     *                It must have at least <code>to - from + 1</code> entries.
+     * @return the number of words found
+     */
+    int tokenize(byte[] buffer, int from, int to, int[] bounds) {
+        this.bounds = bounds;
+        this.count = 0;
+        this.start = -1;
+
+        scan(buffer, from, to);
+
+        if (start >= 0) {       // The last word reaches the end of the range
+            endWord(to);
+        }
+
+        this.bounds = null;
+        return count / 2;
+    }
+
+    /**
+     * Scan the characters starting in the given range of the buffer.
+     *
+     * @param buffer
+     * @param from
+     * @param to
+     */
+    void scan(byte[] buffer, int from, int to) {
+        scan(buffer, from, to, to);
+    }
+
+    /**
+     * Scan the characters starting before <code>limit</code>.
+     * The last character may end after <code>limit</code>, but not after <code>to</code>.
+     *
+     * @param buffer
+     * @param from
+     * @param limit
+     * @param to
+     * @return the offset after the last scanned character
+     */
+    final int scan(byte[] buffer, int from, int limit, int to) {
+        int i = from;
+        while (i < limit) {
+            int b = buffer[i];
+            int length = 1;
+            boolean whitespace;
+
+            if (b >= 0) {
+                whitespace = ASCII_WHITESPACE[b];
+            } else {
+                length = sequenceLength(buffer, i, to);
+                whitespace = length > 1 && isWhitespace(decode(buffer, i, length));
+            }
+
+            if (whitespace) {
+                if (start >= 0) {
+                    endWord(i);
+                }
+            } else if (start < 0) {
+                start = i;
+            }
+
+            i += length;
+        }
+
+        return i;
+    }
+
+    /**
+     * Start a word at the given offset.
+     *
+     * @param offset
+     */
+    final void startWord(int offset) {
+        start = offset;
+    }
+
+    /**
+     * End the current word at the given offset.
+     *
+     * @param offset
+     */
+    final void endWord(int offset) {
+        bounds[count++] = start;
+        bounds[count++] = offset;
+        start = -1;
+    }
+
+    /**
+     * Check if the scan is in a word.
+     *
+     * @return
+     */
+    final boolean inWord() {
+        return start >= 0;
+    }
+
+    /**
+     * Get the number of bytes of the well-formed character starting with the given non-ASCII byte.
+     *
+     * @param buffer
+     * @param offset
+     * @param to
+     * @return the number of bytes, or 1 if the character is malformed
+     */
+    static int sequenceLength(byte[] buffer, int offset, int to) {
+        int b = buffer[offset] & 0xFF;
+        int length = b >= 0xF0 ? (b <= 0xF4 ? 4 : 1) : b >= 0xE0 ? 3 : b >= 0xC2 ? 2 : 1;
+
+        if (offset + length > to) {
+            return 1;
+        }
+        for (int i = 1; i < length; i++) {
+            if ((buffer[offset + i] & 0xC0) != 0x80) {
+                return 1;
+            }
+        }
+
+        // Reject the overlong forms and the surrogates, which are decoded to replacement characters
+        if (length == 3) {
+            int b1 = buffer[offset + 1] & 0xFF;
+            if ((b == 0xE0 && b1 < 0xA0) || (b == 0xED && b1 >= 0xA0)) {
+                return 1;
+            }
+        } else if (length == 4) {
+            int b1 = buffer[offset + 1] & 0xFF;
+            if ((b == 0xF0 && b1 < 0x90) || (b == 0xF4 && b1 >= 0x90)) {
+                return 1;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Decode the well-formed multi-byte character of the given length.
+     *
+     * @param buffer
+     * @param offset
+     * @param length
+     * @return the unicode value of the character
+     */
+    static int decode(byte[] buffer, int offset, int length) {
+        int codePoint = buffer[offset] & (0xFF >> (length + 1));
+        for (int i = 1; i < length; i++) {
+            codePoint = (codePoint << 6) | (buffer[offset + i] & 0x3F);
+        }
+
+        return codePoint;
+    }
+}
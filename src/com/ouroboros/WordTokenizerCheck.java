@@ -0,0 +1,92 @@
+package com.ouroboros;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Check that the vectorized tokenizer finds the same words as the scalar tokenizer.<br>
+ * <br>
+ * Run the program:<br>
+ *      java --add-modules jdk.incubator.vector com.ouroboros.WordTokenizerCheck [number of buffers] [seed]<br>
+ * <br>
+ * The buffers are random mixes of ASCII and multi-byte words, ASCII and multi-byte whitespace characters,
+ * and malformed sequences, or just random bytes. Every buffer is tokenized in a random range by both tokenizers,
+ * and the start and end offsets of the words must be the same.
+ */
+public class WordTokenizerCheck {
+
+    private static final byte[][] PIECES = {
+            bytes("a"), bytes("word"), bytes("\u00E9t\u00E9"), bytes("\u4E2D\u6587"), bytes("\uD835\uDC00"),
+            bytes(" "), bytes("\n"), bytes("\t"), bytes("\u000B"), bytes("\u001C"), bytes("\u001F"),
+            bytes("\u1680"), bytes("\u2000"), bytes("\u2028"), bytes("\u2029"), bytes("\u205F"), bytes("\u3000"),
+            bytes("\u00A0"), bytes("\u0085"), bytes("\u2007"), bytes("\u202F"),        // Not whitespace in Java
+            {(byte) 0x80}, {(byte) 0xBF}, {(byte) 0xC0, (byte) 0xAF}, {(byte) 0xE0, (byte) 0x80, (byte) 0xA0},
+            {(byte) 0xED, (byte) 0xA0, (byte) 0x80}, {(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80},
+            {(byte) 0xF5}, {(byte) 0xFF}, {(byte) 0xE3, (byte) 0x80}, {(byte) 0xE2}, {(byte) 0xF0, (byte) 0x9F, (byte) 0x98}
+    };
+
+    /**
+     * Main method of the program.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        int count = args != null && args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Random random = new Random(args != null && args.length > 1 ? Long.parseLong(args[1]) : 1);
+
+        WordTokenizer vector = WordTokenizer.create();
+        WordTokenizer scalar = new WordTokenizer();
+        if (vector.getClass() == WordTokenizer.class) {
+            System.out.println("The vectorized tokenizer is not available, run with --add-modules jdk.incubator.vector.");
+            System.exit(2);
+        }
+
+        for (int n = 0; n < count; n++) {
+            byte[] buffer = randomBuffer(random);
+            int from = buffer.length == 0 ? 0 : random.nextInt(Math.min(buffer.length, 8) + 1);
+            int to = from + random.nextInt(buffer.length - from + 1);
+
+            int[] vectorBounds = new int[to - from + 1];
+            int[] scalarBounds = new int[to - from + 1];
+            int vectorCount = vector.tokenize(buffer, from, to, vectorBounds);
+            int scalarCount = scalar.tokenize(buffer, from, to, scalarBounds);
+
+            if (vectorCount != scalarCount || !Arrays.equals(vectorBounds, 0, vectorCount * 2, scalarBounds, 0, scalarCount * 2)) {
+                System.out.println("The tokenizers differ on the range " + from + " to " + to + " of the buffer: " + Arrays.toString(buffer));
+                System.exit(1);
+            }
+        }
+
+        System.out.println("The tokenizers agree on " + count + " buffers.");
+    }
+
+    /**
+     * Create a buffer of random pieces, or of random bytes.
+     *
+     * @param random
+     * @return
+     */
+    private static byte[] randomBuffer(Random random) {
+        int length = random.nextInt(400);
+
+        if (random.nextInt(4) == 0) {
+            byte[] buffer = new byte[length];
+            random.nextBytes(buffer);
+            return buffer;
+        }
+
+        // Some buffers are mostly ASCII, so that both the ASCII and the non-ASCII blocks are checked
+        int pieces = random.nextInt(2) == 0 ? 11 : PIECES.length;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(length + 4);
+        while (outputStream.size() < length) {
+            outputStream.writeBytes(PIECES[random.nextInt(pieces)]);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,391 @@
+package com.ouroboros.bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static java.lang.Character.isWhitespace;
+
+/**
+ * Generate a synthetic input file for <code>FileWordSort</code>, together with the expected sorted output.<br>
+ * <br>
+ * Run the program:<br>
+ *      java com.ouroboros.bench.CorpusGenerator "path to corpus file" "path to expected output file" [--option=value ...]<br>
+ * <br>
+ * Options:<br>
+ *      --size                  the size of the corpus in bytes, with an optional K, M or G suffix (default 1M)<br>
+ *      --vocabulary            the number of distinct short words to pick from (default 100000)<br>
+ *      --distribution          <code>zipf</code> or <code>uniform</code>, the distribution of the short words (default zipf)<br>
+ *      --zipfExponent          the exponent of the Zipfian distribution (default 1.0)<br>
+ *      --longWordShare         the share of the written words longer than <code>--wordLengthThreshold</code> (default 0.001)<br>
+ *      --longVocabulary        the number of distinct long words to pick from, uniformly (default 100)<br>
+ *      --maxLongWordLength     the max number of characters of a long word (default 500)<br>
+ *      --wordLengthThreshold   the word length threshold of the sort program (default 50)<br>
+ *      --nonAsciiShare         the share of characters picked from the non-ASCII BMP range (default 0.05)<br>
+ *      --supplementaryShare    the share of characters picked from the supplementary planes (default 0.01)<br>
+ *      --whitespace            <code>ascii</code>, <code>unicode</code> or <code>mixed</code> (default mixed)<br>
+ *      --maxWhitespaceRun      the max number of whitespace characters between two words (default 2)<br>
+ *      --seed                  the seed of the random generator (default 1)<br>
+ * <br>
+ * The words are written in UTF-8. The characters of the words are never whitespace characters,
+ * so the words in the corpus are exactly the words of the vocabulary which were picked.
+ * The expected output holds these words, without duplicates, in the order <code>FileWordSort</code> sorts them.
+ */
+public class CorpusGenerator {
+
+    private static final char[] ASCII_WHITESPACE = {' ', '\n', '\t', '\r', '\f', '\u000B', '\u001C', '\u001F'};
+    private static final char[] UNICODE_WHITESPACE = {'\u3000', '\u2003', '\u2009', '\u2028', '\u2029', '\u1680'};
+
+    private final Options options;
+    private final Random random;
+
+    private String[] vocabulary;        // The long words first, then the short words
+    private int[] vocabularyBytes;      // The number of UTF-8 bytes of each word in the vocabulary
+    private int longWordCount;          // The number of long words in the vocabulary
+    private double[] cumulativeWeights;     // The cumulative Zipfian weights of the short words, null for the uniform distribution
+
+    /**
+     * The options of the corpus generator.
+     */
+    public static final class Options {
+
+        long size = 1L << 20;
+        int vocabulary = 100_000;
+        String distribution = "zipf";
+        double zipfExponent = 1.0;
+        double longWordShare = 0.001;
+        int longVocabulary = 100;
+        int maxLongWordLength = 500;
+        int wordLengthThreshold = 50;
+        double nonAsciiShare = 0.05;
+        double supplementaryShare = 0.01;
+        String whitespace = "mixed";
+        int maxWhitespaceRun = 2;
+        long seed = 1;
+
+        /**
+         * Set the option of the given name.
+         *
+         * @param name
+         * @param value
+         * @return false if there is no option of the given name
+         */
+        public boolean set(String name, String value) {
+            switch (name) {
+                case "size": size = parseSize(value); break;
+                case "vocabulary": vocabulary = Integer.parseInt(value); break;
+                case "distribution": distribution = value; break;
+                case "zipfExponent": zipfExponent = Double.parseDouble(value); break;
+                case "longWordShare": longWordShare = Double.parseDouble(value); break;
+                case "longVocabulary": longVocabulary = Integer.parseInt(value); break;
+                case "maxLongWordLength": maxLongWordLength = Integer.parseInt(value); break;
+                case "wordLengthThreshold": wordLengthThreshold = Integer.parseInt(value); break;
+                case "nonAsciiShare": nonAsciiShare = Double.parseDouble(value); break;
+                case "supplementaryShare": supplementaryShare = Double.parseDouble(value); break;
+                case "whitespace": whitespace = value; break;
+                case "maxWhitespaceRun": maxWhitespaceRun = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                default: return false;
+            }
+            return true;
+        }
+
+        /**
+         * Check that the options are consistent.
+         *
+         * @throws IllegalArgumentException
+         */
+        void validate() {
+            if (size <= 0 || vocabulary <= 0 || wordLengthThreshold <= 0 || maxWhitespaceRun <= 0) {
+                throw new IllegalArgumentException("The size, vocabulary, word length threshold and whitespace run must be positive.");
+            }
+            if (!"zipf".equals(distribution) && !"uniform".equals(distribution)) {
+                throw new IllegalArgumentException("Unknown distribution: " + distribution);
+            }
+            if (!"ascii".equals(whitespace) && !"unicode".equals(whitespace) && !"mixed".equals(whitespace)) {
+                throw new IllegalArgumentException("Unknown whitespace kind: " + whitespace);
+            }
+            if (longWordShare < 0 || longWordShare > 1) {
+                throw new IllegalArgumentException("Invalid long word share.");
+            }
+            if (longWordShare > 0 && longVocabulary <= 0) {
+                throw new IllegalArgumentException("The long vocabulary must be positive when there are long words.");
+            }
+            if (longWordShare > 0 && maxLongWordLength <= wordLengthThreshold) {
+                throw new IllegalArgumentException("The max long word length must be greater than the word length threshold.");
+            }
+            if (nonAsciiShare < 0 || supplementaryShare < 0 || nonAsciiShare + supplementaryShare > 1) {
+                throw new IllegalArgumentException("Invalid character shares.");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "size=" + size + " vocabulary=" + vocabulary + " distribution=" + distribution
+                    + ("zipf".equals(distribution) ? " zipfExponent=" + zipfExponent : "")
+                    + " longWordShare=" + longWordShare + " longVocabulary=" + longVocabulary + " nonAsciiShare=" + nonAsciiShare
+                    + " supplementaryShare=" + supplementaryShare + " whitespace=" + whitespace + " seed=" + seed;
+        }
+    }
+
+    /**
+     * Main method of the program.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        if (args == null || args.length < 2) {
+            System.out.println("Invalid arguments for the program.");
+            return;
+        }
+
+        Options options = new Options();
+        for (int i = 2; i < args.length; i++) {
+            if (!parseOption(options, args[i])) {
+                System.out.println("Invalid option: " + args[i]);
+                return;
+            }
+        }
+
+        try {
+            new CorpusGenerator(options).generate(Paths.get(args[0]), Paths.get(args[1]));
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error occurred when generating the corpus: ");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Parse an option of the form <code>--name=value</code>.
+     *
+     * @param options
+     * @param arg
+     * @return false if the option is invalid
+     */
+    static boolean parseOption(Options options, String arg) {
+        int separator = arg.indexOf('=');
+        if (!arg.startsWith("--") || separator < 0) {
+            return false;
+        }
+
+        try {
+            return options.set(arg.substring(2, separator), arg.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parse a number of bytes with an optional K, M or G suffix.
+     *
+     * @param value
+     * @return
+     */
+    static long parseSize(String value) {
+        String v = value.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (v.endsWith("K")) {
+            unit = 1L << 10;
+        } else if (v.endsWith("M")) {
+            unit = 1L << 20;
+        } else if (v.endsWith("G")) {
+            unit = 1L << 30;
+        }
+
+        return Long.parseLong(unit == 1 ? v : v.substring(0, v.length() - 1)) * unit;
+    }
+
+    public CorpusGenerator(Options options) {
+        options.validate();
+        this.options = options;
+        this.random = new Random(options.seed);
+    }
+
+    /**
+     * Write the corpus to the given file and the expected sorted output to the other file.
+     *
+     * @param corpusPath
+     * @param expectedPath
+     * @throws IOException
+     */
+    public void generate(Path corpusPath, Path expectedPath) throws IOException {
+        createVocabulary();
+
+        BitSet usedWords = new BitSet(vocabulary.length);       // Record which words were written to the corpus
+        char[] whitespace = whitespaceCharacters();
+
+        try (Writer outputStream = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(corpusPath), StandardCharsets.UTF_8), 1 << 16)) {
+
+            long written = 0;
+            while (written < options.size) {
+                int index = pickWord();
+                outputStream.write(vocabulary[index]);
+                written += vocabularyBytes[index];
+                usedWords.set(index);
+
+                // Separate the words with a run of whitespace characters
+                int run = 1 + random.nextInt(options.maxWhitespaceRun);
+                for (int i = 0; i < run; i++) {
+                    char c = whitespace[random.nextInt(whitespace.length)];
+                    outputStream.write(c);
+                    written += c < 0x80 ? 1 : 3;
+                }
+            }
+        }
+
+        writeExpected(usedWords, expectedPath);
+    }
+
+    /**
+     * Write the used words, sorted and without duplicates, one word per line.
+     *
+     * @param usedWords
+     * @param expectedPath
+     * @throws IOException
+     */
+    private void writeExpected(BitSet usedWords, Path expectedPath) throws IOException {
+        String[] words = new String[usedWords.cardinality()];
+        int count = 0;
+        for (int i = usedWords.nextSetBit(0); i >= 0; i = usedWords.nextSetBit(i + 1)) {
+            words[count++] = vocabulary[i];
+        }
+
+        // String order compares the UTF-16 code units, the same as the sort program
+        Arrays.sort(words);
+
+        try (Writer outputStream = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(expectedPath), StandardCharsets.UTF_8), 1 << 16)) {
+            for (String word : words) {
+                outputStream.write(word);
+                outputStream.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Create the distinct words to pick from, and the weights of the short words for the Zipfian distribution.
+     */
+    private void createVocabulary() {
+        longWordCount = options.longWordShare > 0 ? options.longVocabulary : 0;
+        int size = longWordCount + options.vocabulary;
+
+        Set<String> words = new HashSet<>(size * 2);
+        vocabulary = new String[size];
+        vocabularyBytes = new int[size];
+
+        int count = 0;
+        while (count < size) {
+            String word = count < longWordCount ? createLongWord() : createShortWord();
+            if (words.add(word)) {
+                vocabulary[count++] = word;
+            }
+        }
+
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabularyBytes[i] = vocabulary[i].getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        // The long words are picked apart from the ranks, so that they take the requested share of the written words
+        if ("zipf".equals(options.distribution)) {
+            cumulativeWeights = new double[options.vocabulary];
+            double sum = 0;
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                sum += 1.0 / Math.pow(i + 1, options.zipfExponent);
+                cumulativeWeights[i] = sum;
+            }
+        }
+    }
+
+    /**
+     * Pick the index of the next word from the vocabulary.
+     * Pick a long word with the probability of <code>longWordShare</code>, otherwise pick a short word by the distribution.
+     *
+     * @return
+     */
+    private int pickWord() {
+        if (longWordCount > 0 && random.nextDouble() < options.longWordShare) {
+            return random.nextInt(longWordCount);
+        }
+
+        if (cumulativeWeights == null) {
+            return longWordCount + random.nextInt(options.vocabulary);
+        }
+
+        double target = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int index = Arrays.binarySearch(cumulativeWeights, target);
+        return longWordCount + Math.min(index >= 0 ? index : -index - 1, options.vocabulary - 1);
+    }
+
+    /**
+     * Create a word of at most <code>wordLengthThreshold</code> characters, counted in UTF-16 code units.
+     * Most of the words are short, like the words of a natural language.
+     *
+     * @return
+     */
+    private String createShortWord() {
+        int length = Math.min(options.wordLengthThreshold, 1 + (int) Math.abs(random.nextGaussian() * 6) + random.nextInt(4));
+        return createWord(length);
+    }
+
+    /**
+     * Create a word of more than <code>wordLengthThreshold</code> characters, counted in UTF-16 code units.
+     *
+     * @return
+     */
+    private String createLongWord() {
+        int length = options.wordLengthThreshold + 1 + random.nextInt(options.maxLongWordLength - options.wordLengthThreshold);
+        return createWord(length);
+    }
+
+    /**
+     * Create a word of the given number of UTF-16 code units.
+     *
+     * @param length
+     * @return
+     */
+    private String createWord(int length) {
+        StringBuilder stringBuilder = new StringBuilder(length);
+        while (stringBuilder.length() < length) {
+            double p = random.nextDouble();
+            int codePoint;
+            if (p < options.supplementaryShare && length - stringBuilder.length() >= 2) {
+                // Mathematical alphanumeric symbols and emoji, saved as surrogate pairs
+                codePoint = random.nextBoolean() ? 0x1D400 + random.nextInt(0x34) : 0x1F600 + random.nextInt(0x50);
+            } else if (p < options.supplementaryShare + options.nonAsciiShare) {
+                // Latin-1, Cyrillic and CJK letters
+                int range = random.nextInt(3);
+                codePoint = range == 0 ? 0xC0 + random.nextInt(0x3F) : range == 1 ? 0x410 + random.nextInt(0x40) : 0x4E00 + random.nextInt(0x5000);
+            } else {
+                codePoint = 'a' + random.nextInt(26);
+            }
+
+            if (!isWhitespace(codePoint)) {
+                stringBuilder.appendCodePoint(codePoint);
+            }
+        }
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Get the whitespace characters to separate the words with.
+     *
+     * @return
+     */
+    private char[] whitespaceCharacters() {
+        switch (options.whitespace) {
+            case "ascii":
+                return ASCII_WHITESPACE;
+            case "unicode":
+                return UNICODE_WHITESPACE;
+            default:
+                char[] whitespace = Arrays.copyOf(ASCII_WHITESPACE, ASCII_WHITESPACE.length + UNICODE_WHITESPACE.length);
+                System.arraycopy(UNICODE_WHITESPACE, 0, whitespace, ASCII_WHITESPACE.length, UNICODE_WHITESPACE.length);
+                return whitespace;
+        }
+    }
+}
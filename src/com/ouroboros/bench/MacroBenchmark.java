@@ -0,0 +1,381 @@
+package com.ouroboros.bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.lang.module.ModuleFinder;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run <code>FileWordSort</code> end to end on synthetic corpora, and record how it scales.<br>
+ * <br>
+ * Run the program:<br>
+ *      java com.ouroboros.bench.MacroBenchmark "path to work folder" [--option=value ...]<br>
+ * <br>
+ * Options:<br>
+ *      --sizes         the corpus sizes, separated by commas, with an optional K, M or G suffix (default 64K,1M,16M)<br>
+ *      --threads       the numbers of processors the sort program may use, separated by commas (default 1,2,4)<br>
+ *      --repeat        the number of runs for each size and number of threads (default 1)<br>
+ *      --heap          the max heap size of the sort program (default 5m)<br>
+ *      --results       the CSV file to save the results to (default "work folder"/results.csv)<br>
+ *      --jvmArgs       extra JVM arguments of the sort program, separated by spaces,
+ *                      e.g. -Dfilewordsort.scalarTokenizer=true to compare with the scalar tokenizer<br>
+ *      the options of <code>CorpusGenerator</code>, except --size<br>
+ * <br>
+ * For every size, a corpus and its expected output are generated once and reused.
+ * Every run starts the sort program in a new JVM, in a new folder, so that the temp files of the run can be measured.
+ * While the program runs, its peak resident set size (Linux only) and the size of its temp files are sampled.
+ * Each run is saved as a CSV row: requested size, actual size, threads, run, seconds, throughput in MB/s,
+ * peak RSS in KB, peak temp bytes, and whether the output matches the expected output.
+ * The scaling curves by input size and by number of threads are printed at the end.
+ */
+public class MacroBenchmark {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 20;      // How often the memory and the temp disk usage are sampled
+    private static final String MAIN_CLASS = "com.ouroboros.FileWordSort";
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private final Path workFolder;
+    private final CorpusGenerator.Options corpusOptions = new CorpusGenerator.Options();
+
+    private long[] sizes = {64L << 10, 1L << 20, 16L << 20};
+    private int[] threads = {1, 2, 4};
+    private int repeat = 1;
+    private String heap = "5m";
+    private Path resultsPath;
+    private List<String> jvmArgs = new ArrayList<>();
+
+    /**
+     * The measurements of one run of the sort program.
+     */
+    private static final class Run {
+        long size;      // The requested corpus size
+        long bytes;     // The actual corpus size
+        int threads;
+        int run;
+        double seconds;
+        long peakRssKb = -1;
+        long peakTempBytes;
+        boolean correct;
+
+        double throughput() {
+            return bytes / (1024.0 * 1024.0) / seconds;
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%d,%d,%d,%d,%.3f,%.3f,%d,%d,%b",
+                    size, bytes, threads, run, seconds, throughput(), peakRssKb, peakTempBytes, correct);
+        }
+    }
+
+    /**
+     * Main method of the program.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        if (args == null || args.length < 1) {
+            System.out.println("Invalid arguments for the program.");
+            return;
+        }
+
+        MacroBenchmark benchmark = new MacroBenchmark(Paths.get(args[0]));
+        for (int i = 1; i < args.length; i++) {
+            if (!benchmark.parseOption(args[i])) {
+                System.out.println("Invalid option: " + args[i]);
+                return;
+            }
+        }
+
+        try {
+            List<Run> runs = benchmark.runAll();
+            benchmark.printCurves(runs);
+
+            if (runs.stream().anyMatch(r -> !r.correct)) {
+                System.out.println("Some runs produced incorrect output.");
+                System.exit(1);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error occurred when running the benchmark: ");
+            e.printStackTrace();
+            System.exit(2);
+        } catch (InterruptedException e) {
+            System.out.println("The benchmark is interrupted.");
+            System.exit(2);
+        }
+    }
+
+    MacroBenchmark(Path workFolder) {
+        this.workFolder = workFolder.toAbsolutePath();
+        this.resultsPath = this.workFolder.resolve("results.csv");
+    }
+
+    /**
+     * Parse an option of the form <code>--name=value</code>.
+     *
+     * @param arg
+     * @return false if the option is invalid
+     */
+    private boolean parseOption(String arg) {
+        int separator = arg.indexOf('=');
+        if (!arg.startsWith("--") || separator < 0) {
+            return false;
+        }
+
+        String name = arg.substring(2, separator);
+        String value = arg.substring(separator + 1);
+        try {
+            switch (name) {
+                case "sizes": sizes = Arrays.stream(value.split(",")).mapToLong(CorpusGenerator::parseSize).toArray(); break;
+                case "threads": threads = Arrays.stream(value.split(",")).mapToInt(v -> Integer.parseInt(v.trim())).toArray(); break;
+                case "repeat": repeat = Integer.parseInt(value); break;
+                case "heap": heap = value; break;
+                case "results": resultsPath = Paths.get(value).toAbsolutePath(); break;
+                case "jvmArgs": jvmArgs = Arrays.asList(value.trim().split("\\s+")); break;
+                case "size": return false;
+                default: return corpusOptions.set(name, value);
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Generate the corpora and run the sort program for every size and number of threads.
+     *
+     * @return the measurements of all the runs
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private List<Run> runAll() throws IOException, InterruptedException {
+        Files.createDirectories(workFolder);
+        List<Run> runs = new ArrayList<>();
+
+        try (PrintWriter resultsStream = new PrintWriter(Files.newBufferedWriter(resultsPath, StandardCharsets.UTF_8))) {
+            resultsStream.println("size,bytes,threads,run,seconds,throughput_mb_s,peak_rss_kb,peak_temp_bytes,correct");
+
+            for (long size : sizes) {
+                corpusOptions.size = size;
+                Path corpusPath = workFolder.resolve("corpus-" + size + ".txt");
+                Path expectedPath = workFolder.resolve("expected-" + size + ".txt");
+
+                System.out.println("Generating corpus: " + corpusOptions);
+                new CorpusGenerator(corpusOptions).generate(corpusPath, expectedPath);
+
+                for (int t : threads) {
+                    for (int r = 1; r <= repeat; r++) {
+                        Run run = runOnce(corpusPath, expectedPath, t, r);
+                        runs.add(run);
+
+                        resultsStream.println(run.toCsv());
+                        resultsStream.flush();
+                        System.out.println(run.toCsv());
+                    }
+                }
+
+                Files.deleteIfExists(corpusPath);
+                Files.deleteIfExists(expectedPath);
+            }
+        }
+
+        return runs;
+    }
+
+    /**
+     * Run the sort program in a new JVM, sampling its memory and temp disk usage until it finishes.
+     *
+     * @param corpusPath
+     * @param expectedPath
+     * @param threadCount
+     * @param runNum
+     * @return
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private Run runOnce(Path corpusPath, Path expectedPath, int threadCount, int runNum) throws IOException, InterruptedException {
+        // The sort program creates its temp folder in the working folder, keep the output file out of it
+        Path runFolder = Files.createTempDirectory(workFolder, "run-");
+        Path outputPath = workFolder.resolve(runFolder.getFileName() + ".out");
+        Path logPath = workFolder.resolve(runFolder.getFileName() + ".log");
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xms2m");
+        command.add("-Xmx" + heap);
+        command.add("-Dfile.encoding=UTF-8");
+        command.add("-XX:ActiveProcessorCount=" + threadCount);      // Limits the threads of the JVM, such as the GC threads
+        if (ModuleFinder.ofSystem().find(VECTOR_MODULE).isPresent()) {
+            command.add("--add-modules=" + VECTOR_MODULE);        // Use the vectorized tokenizer when the JDK has it
+        }
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MAIN_CLASS);
+        command.add(corpusPath.toString());
+        command.add(outputPath.toString());
+
+        Run run = new Run();
+        run.size = corpusOptions.size;
+        run.bytes = Files.size(corpusPath);
+        run.threads = threadCount;
+        run.run = runNum;
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(runFolder.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(logPath.toFile())
+                .start();
+
+        Path statusPath = Paths.get("/proc", Long.toString(process.pid()), "status");
+        while (!process.waitFor(SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+            run.peakRssKb = Math.max(run.peakRssKb, readPeakRss(statusPath));
+            run.peakTempBytes = Math.max(run.peakTempBytes, folderSize(runFolder));
+        }
+        run.seconds = (System.nanoTime() - start) / 1e9;
+
+        // The sort program reports errors to the console instead of the exit code
+        String log = new String(Files.readAllBytes(logPath), StandardCharsets.UTF_8);
+        run.correct = process.exitValue() == 0 && !log.contains("Error occurred")
+                && SortOracle.compare(expectedPath, outputPath) == null;
+
+        if (run.correct) {
+            Files.deleteIfExists(logPath);
+        } else {
+            System.out.println("Incorrect output, see " + logPath);
+        }
+        Files.deleteIfExists(outputPath);
+        deleteFolder(runFolder);
+
+        return run;
+    }
+
+    /**
+     * Print the throughput by input size for every number of threads,
+     * and the speedup by number of threads for every input size.
+     *
+     * @param runs
+     */
+    private void printCurves(List<Run> runs) {
+        System.out.println();
+        System.out.println("Throughput (MB/s) by input size:");
+        System.out.printf(Locale.ROOT, "%14s", "size \\ threads");
+        for (int t : threads) {
+            System.out.printf(Locale.ROOT, "%10d", t);
+        }
+        System.out.println();
+        for (long size : sizes) {
+            System.out.printf(Locale.ROOT, "%14d", size);
+            for (int t : threads) {
+                System.out.printf(Locale.ROOT, "%10.3f", median(runs, size, t, false));
+            }
+            System.out.println();
+        }
+
+        System.out.println();
+        System.out.println("Speedup by number of threads, relative to " + threads[0] + " thread(s):");
+        System.out.printf(Locale.ROOT, "%14s", "size \\ threads");
+        for (int t : threads) {
+            System.out.printf(Locale.ROOT, "%10d", t);
+        }
+        System.out.println();
+        for (long size : sizes) {
+            double base = median(runs, size, threads[0], true);
+            System.out.printf(Locale.ROOT, "%14d", size);
+            for (int t : threads) {
+                System.out.printf(Locale.ROOT, "%10.2f", base / median(runs, size, t, true));
+            }
+            System.out.println();
+        }
+
+        System.out.println();
+        System.out.println("Results saved to " + resultsPath);
+    }
+
+    /**
+     * Get the median throughput or time of the runs of the given size and number of threads.
+     *
+     * @param runs
+     * @param size
+     * @param threadCount
+     * @param seconds  true to get the time, false to get the throughput
+     * @return
+     */
+    private double median(List<Run> runs, long size, int threadCount, boolean seconds) {
+        double[] values = runs.stream()
+                .filter(r -> r.size == size && r.threads == threadCount)
+                .mapToDouble(r -> seconds ? r.seconds : r.throughput())
+                .sorted()
+                .toArray();
+
+        return values.length == 0 ? Double.NaN : values[values.length / 2];
+    }
+
+    /**
+     * Read the peak resident set size of a process.
+     *
+     * @param statusPath  the /proc status file of the process
+     * @return the peak resident set size in KB, or -1 if it cannot be read
+     */
+    private static long readPeakRss(Path statusPath) {
+        try {
+            for (String line : Files.readAllLines(statusPath, StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The process has exited or the platform has no /proc
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the total size of the files in the given folder.
+     * The files may be deleted by the sort program while they are visited, such files are skipped.
+     *
+     * @param folder
+     * @return
+     */
+    private static long folderSize(Path folder) {
+        long[] size = new long[1];
+        try {
+            Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // Keep what is counted so far
+        }
+
+        return size[0];
+    }
+
+    /**
+     * Delete the given folder as well as all the sub-folders and files.
+     *
+     * @param folder
+     * @throws IOException
+     */
+    private static void deleteFolder(Path folder) throws IOException {
+        if (Files.exists(folder)) {
+            Files.walk(folder)
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.ouroboros.bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.TreeSet;
+
+import static java.lang.Character.isWhitespace;
+
+/**
+ * Check the output of <code>FileWordSort</code>.<br>
+ * <br>
+ * Run the program:<br>
+ *      1. Compare with the expected output written by <code>CorpusGenerator</code>:
+ *          java com.ouroboros.bench.SortOracle --expected "path to expected output file" "path to output file" <br>
+ *      2. Compute the expected output from any input file small enough to fit in memory:
+ *          java com.ouroboros.bench.SortOracle "path to input file" "path to output file" <br>
+ * <br>
+ * The output is correct if it holds every word of the input exactly once, one word per line,
+ * sorted by the unicode values of the characters in order of their appearance in the words.
+ * All the files are read in UTF-8.
+ */
+public class SortOracle {
+
+    /**
+     * Main method of the program.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        try {
+            String mismatch;
+            if (args != null && args.length == 3 && "--expected".equals(args[0])) {
+                mismatch = compare(Paths.get(args[1]), Paths.get(args[2]));
+            } else if (args != null && args.length == 2) {
+                mismatch = verify(Paths.get(args[0]), Paths.get(args[1]));
+            } else {
+                System.out.println("Invalid arguments for the program.");
+                return;
+            }
+
+            System.out.println(mismatch == null ? "Output is correct." : "Output is incorrect: " + mismatch);
+            if (mismatch != null) {
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            System.out.println("Error occurred when checking the output: ");
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Compute the expected output of the input file in memory, and compare it with the actual output.
+     *
+     * @param inputPath
+     * @param outputPath
+     * @return a description of the first difference, or null if the output is correct
+     * @throws IOException
+     */
+    public static String verify(Path inputPath, Path outputPath) throws IOException {
+        TreeSet<String> words = new TreeSet<>();
+
+        try (Reader inputStream = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(inputPath), StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder stringBuilder = new StringBuilder();
+            int i;
+            while ((i = inputStream.read()) != -1) {
+                if (isWhitespace(i)) {
+                    if (stringBuilder.length() > 0) {
+                        words.add(stringBuilder.toString());
+                        stringBuilder.setLength(0);
+                    }
+                } else {
+                    stringBuilder.append((char) i);
+                }
+            }
+
+            if (stringBuilder.length() > 0) {
+                words.add(stringBuilder.toString());
+            }
+        }
+
+        try (BufferedReader outputStream = Files.newBufferedReader(outputPath, StandardCharsets.UTF_8)) {
+            long lineNum = 0;
+            for (String expected : words) {
+                lineNum++;
+                String actual = readLine(outputStream);
+                if (!expected.equals(actual)) {
+                    return describe(lineNum, expected, actual);
+                }
+            }
+
+            String actual = readLine(outputStream);
+            return actual == null ? null : describe(lineNum + 1, null, actual);
+        }
+    }
+
+    /**
+     * Compare the actual output with the expected output, line by line.
+     * Also check that the actual output is sorted without duplicates,
+     * so that a wrong expected output does not hide a broken sort.
+     *
+     * @param expectedPath
+     * @param outputPath
+     * @return a description of the first difference, or null if the output is correct
+     * @throws IOException
+     */
+    public static String compare(Path expectedPath, Path outputPath) throws IOException {
+        try (BufferedReader expectedStream = Files.newBufferedReader(expectedPath, StandardCharsets.UTF_8);
+             BufferedReader outputStream = Files.newBufferedReader(outputPath, StandardCharsets.UTF_8)) {
+
+            long lineNum = 0;
+            String previous = null;
+            while (true) {
+                lineNum++;
+                String expected = readLine(expectedStream);
+                String actual = readLine(outputStream);
+
+                if (expected == null && actual == null) {
+                    return null;
+                }
+                if (expected == null || !expected.equals(actual)) {
+                    return describe(lineNum, expected, actual);
+                }
+                if (previous != null && previous.compareTo(actual) >= 0) {
+                    return "line " + lineNum + " is not greater than the previous line";
+                }
+
+                previous = actual;
+            }
+        }
+    }
+
+    /**
+     * Read a line terminated by '\n'.
+     * Unlike <code>BufferedReader.readLine</code>, do not treat '\r' as a line terminator,
+     * since the words never contain it and a stray '\r' should be reported as a difference.
+     *
+     * @param inputStream
+     * @return the line, or null at the end of the file
+     * @throws IOException
+     */
+    private static String readLine(Reader inputStream) throws IOException {
+        StringBuilder stringBuilder = new StringBuilder();
+        int i;
+        while ((i = inputStream.read()) != -1 && i != '\n') {
+            stringBuilder.append((char) i);
+        }
+
+        return i == -1 && stringBuilder.length() == 0 ? null : stringBuilder.toString();
+    }
+
+    private static String describe(long lineNum, String expected, String actual) {
+        return "line " + lineNum + " expected " + (expected == null ? "end of file" : "\"" + expected + "\"")
+                + " but was " + (actual == null ? "end of file" : "\"" + actual + "\"");
+    }
+}